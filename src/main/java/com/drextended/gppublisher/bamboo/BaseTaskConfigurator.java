@@ -40,6 +40,8 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
     public static final String FIND_JSON_KEY_IN_FILE = "findJsonKeyInFile";
     public static final String APK_PATH = "apkPath";
     public static final String DEOBFUSCATION_FILE_PATH = "deobfuscationFilePath";
+    public static final String MAIN_OBB_PATH = "mainObbPath";
+    public static final String PATCH_OBB_PATH = "patchObbPath";
     public static final String RECENT_CHANGES_LISTINGS = "recentChangesListings";
 //    public static final String APK_ARTIFACT = "apkArtifact";
 //    public static final String APK_ARTIFACT_LIST = "apkArtifactList";
@@ -50,6 +52,9 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
 
     public static final String ROLLOUT_FRACTION = "rolloutFraction";
     public static final String ROLLOUT_FRACTION_DEFAULT = "0.1"; // Acceptable values are 0.05, 0.1, 0.2, and 0.5
+
+    public static final String COALESCE_WINDOW = "coalesceWindow";
+    public static final int COALESCE_WINDOW_MAX = 300; // seconds, see EditCoalescingRegistry.MAX_WINDOW_MILLIS
     private static final Map<String, String> TRACK_MAP = ImmutableMap.<String, String>builder()
             .put(TRACK_NONE, TRACK_NONE)
             .put(TRACK_INTERNAL, TRACK_INTERNAL)
@@ -77,10 +82,13 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
         config.put(JSON_KEY_CONTENT, params.getString(JSON_KEY_CONTENT));
         config.put(APK_PATH, params.getString(APK_PATH));
         config.put(DEOBFUSCATION_FILE_PATH, params.getString(DEOBFUSCATION_FILE_PATH));
+        config.put(MAIN_OBB_PATH, params.getString(MAIN_OBB_PATH));
+        config.put(PATCH_OBB_PATH, params.getString(PATCH_OBB_PATH));
         config.put(RECENT_CHANGES_LISTINGS, params.getString(RECENT_CHANGES_LISTINGS));
         config.put(TRACK, params.getString(TRACK));
         config.put(TRACK_CUSTOM_NAMES, params.getString(TRACK_CUSTOM_NAMES));
         config.put(ROLLOUT_FRACTION, params.getString(ROLLOUT_FRACTION));
+        config.put(COALESCE_WINDOW, params.getString(COALESCE_WINDOW));
         return config;
     }
 
@@ -104,12 +112,15 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
         context.put(JSON_KEY_PATH, taskDefinition.getConfiguration().get(JSON_KEY_PATH));
         context.put(APK_PATH, taskDefinition.getConfiguration().get(APK_PATH));
         context.put(DEOBFUSCATION_FILE_PATH, taskDefinition.getConfiguration().get(DEOBFUSCATION_FILE_PATH));
+        context.put(MAIN_OBB_PATH, taskDefinition.getConfiguration().get(MAIN_OBB_PATH));
+        context.put(PATCH_OBB_PATH, taskDefinition.getConfiguration().get(PATCH_OBB_PATH));
         context.put(RECENT_CHANGES_LISTINGS, taskDefinition.getConfiguration().get(RECENT_CHANGES_LISTINGS));
         context.put(TRACK_TYPES, TRACK_MAP);
         context.put(TRACK, taskDefinition.getConfiguration().get(TRACK));
         String fraction = taskDefinition.getConfiguration().get(ROLLOUT_FRACTION);
         context.put(ROLLOUT_FRACTION, fraction != null ? fraction : ROLLOUT_FRACTION_DEFAULT);
         context.put(TRACK_CUSTOM_NAMES, taskDefinition.getConfiguration().get(TRACK_CUSTOM_NAMES));
+        context.put(COALESCE_WINDOW, taskDefinition.getConfiguration().get(COALESCE_WINDOW));
     }
 
     @Override
@@ -128,6 +139,10 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
         if (apkPath == null || (!apkPath.endsWith(".apk") && !apkPath.endsWith(".aab"))) {
             errorCollection.addError(APK_PATH, "Should be path to *.apk or *.aab file");
         }
+        if (apkPath != null && !apkPath.endsWith(".apk")) {
+            validateEmptyForBundle(params, errorCollection, MAIN_OBB_PATH);
+            validateEmptyForBundle(params, errorCollection, PATCH_OBB_PATH);
+        }
 
         validateNotEmpty(params, errorCollection, TRACK);
         String track = params.getString(TRACK);
@@ -149,6 +164,25 @@ public class BaseTaskConfigurator extends AbstractTaskConfigurator {
         } else if (TRACK_CUSTOM.equals(track)) {
             validateNotEmpty(params, errorCollection, TRACK_CUSTOM_NAMES);
         }
+
+        String coalesceWindow = params.getString(COALESCE_WINDOW);
+        if (!StringUtils.isBlank(coalesceWindow)) {
+            try {
+                int window = Integer.parseInt(coalesceWindow.trim());
+                if (window < 0 || window > COALESCE_WINDOW_MAX) {
+                    errorCollection.addError(COALESCE_WINDOW, "Coalescing window must be in range (0 <= window <= " + COALESCE_WINDOW_MAX + ")");
+                }
+            } catch (NumberFormatException ex) {
+                errorCollection.addError(COALESCE_WINDOW, "Coalescing window cannot be parsed as integer");
+            }
+        }
+    }
+
+    private void validateEmptyForBundle(@NotNull ActionParametersMap params, @NotNull final ErrorCollection errorCollection, @NotNull String key) {
+        final String value = params.getString(key);
+        if (!StringUtils.isEmpty(value)) {
+            errorCollection.addError(key, "Expansion files are supported for *.apk files only");
+        }
     }
 
     private void validateNotEmpty(@NotNull ActionParametersMap params, @NotNull final ErrorCollection errorCollection, @NotNull String key) {
@@ -18,6 +18,9 @@ package com.drextended.gppublisher.bamboo;
 import com.atlassian.bamboo.build.logger.BuildLogger;
 import com.atlassian.bamboo.task.*;
 import com.drextended.gppublisher.bamboo.util.AndroidPublisherHelper;
+import com.drextended.gppublisher.bamboo.util.EditCoalescer;
+import com.drextended.gppublisher.bamboo.util.ExpansionFileRecords;
+import com.drextended.gppublisher.bamboo.util.PublishStatusReporter;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -39,10 +42,18 @@ public class GPPBuildTask implements TaskType {
         final boolean findJsonKeyInFile = taskContext.getConfigurationMap().getAsBoolean(FIND_JSON_KEY_IN_FILE);
         final String apkPath = taskContext.getConfigurationMap().get(APK_PATH);
         final String deobfuscationFilePath = taskContext.getConfigurationMap().get(DEOBFUSCATION_FILE_PATH);
+        final String mainObbPath = taskContext.getConfigurationMap().get(MAIN_OBB_PATH);
+        final String patchObbPath = taskContext.getConfigurationMap().get(PATCH_OBB_PATH);
         final String recentChangesListings = taskContext.getConfigurationMap().get(RECENT_CHANGES_LISTINGS);
         final String track = taskContext.getConfigurationMap().get(TRACK);
         final String rolloutFraction = taskContext.getConfigurationMap().get(ROLLOUT_FRACTION);
         final String trackCustomNames = taskContext.getConfigurationMap().get(TRACK_CUSTOM_NAMES);
+        final String mainObbRecord = taskContext.getRuntimeTaskData().get(ExpansionFileRecords.key(packageName, ExpansionFileRecords.TYPE_MAIN));
+        final String patchObbRecord = taskContext.getRuntimeTaskData().get(ExpansionFileRecords.key(packageName, ExpansionFileRecords.TYPE_PATCH));
+        final String statusUrl = taskContext.getRuntimeTaskData().get(PublishStatusReporter.STATUS_URL);
+        final String statusToken = taskContext.getRuntimeTaskData().get(PublishStatusReporter.STATUS_TOKEN);
+        final String coalesceWindow = taskContext.getConfigurationMap().get(COALESCE_WINDOW);
+        final String coalesceUrl = taskContext.getRuntimeTaskData().get(EditCoalescer.COALESCE_URL);
 
         buildLogger.addBuildLogEntry("Start deploy task for app " + applicationName);
 
@@ -60,9 +71,19 @@ public class GPPBuildTask implements TaskType {
                     recentChangesListings,
                     track,
                     rolloutFraction,
-                    trackCustomNames);
+                    trackCustomNames,
+                    mainObbPath,
+                    patchObbPath,
+                    mainObbRecord,
+                    patchObbRecord,
+                    statusUrl,
+                    statusToken,
+                    coalesceWindow,
+                    coalesceUrl);
             helper.init();
             helper.makeInsertRequest();
+            // Sent back to the server with the result, see StatusReportingDataProvider
+            taskContext.getCommonContext().getCurrentResult().getCustomBuildData().putAll(helper.getExpansionFileRecords());
 
             builder.success();
         } catch (IOException ex) {
@@ -0,0 +1,104 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo;
+
+import com.atlassian.bamboo.configuration.AdministrationConfigurationAccessor;
+import com.atlassian.bamboo.task.TaskDefinition;
+import com.atlassian.bamboo.task.runtime.RuntimeTaskDataProvider;
+import com.atlassian.bamboo.v2.build.CommonContext;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.drextended.gppublisher.bamboo.util.EditCoalescer;
+import com.drextended.gppublisher.bamboo.util.ExpansionFileRecords;
+import com.drextended.gppublisher.bamboo.util.PublishStatusRegistry;
+import com.drextended.gppublisher.bamboo.util.PublishStatusReporter;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs on the server. Opens a status report slot before the task is sent to an agent,
+ * passes the report url and token to the agent, and closes the slot when the task has finished.
+ * The same token lets the agent coalesce its publish with others, see {@link EditCoalescer}.
+ * <p>
+ * Also keeps the {@link ExpansionFileRecords}: the records of the package are passed to the agent,
+ * and the records the agent returns in the custom data of the result are stored in the plugin settings.
+ * </p>
+ */
+public class StatusReportingDataProvider implements RuntimeTaskDataProvider {
+
+    private final AdministrationConfigurationAccessor administrationConfigurationAccessor;
+    private final PluginSettingsFactory pluginSettingsFactory;
+
+    @Inject
+    public StatusReportingDataProvider(
+            @ComponentImport AdministrationConfigurationAccessor administrationConfigurationAccessor,
+            @ComponentImport PluginSettingsFactory pluginSettingsFactory
+    ) {
+        this.administrationConfigurationAccessor = administrationConfigurationAccessor;
+        this.pluginSettingsFactory = pluginSettingsFactory;
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> populateRuntimeTaskData(@NotNull TaskDefinition taskDefinition, @NotNull CommonContext commonContext) {
+        final Map<String, String> data = new HashMap<String, String>();
+        final String packageName = taskDefinition.getConfiguration().get(BaseTaskConfigurator.PACKAGE_NAME);
+        if (!StringUtils.isEmpty(packageName)) {
+            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
+            for (String key : ExpansionFileRecords.keys(packageName)) {
+                Object record = settings.get(key);
+                if (record instanceof String) {
+                    data.put(key, (String) record);
+                }
+            }
+        }
+
+        String baseUrl = administrationConfigurationAccessor.getAdministrationConfiguration().getBaseUrl();
+        if (!StringUtils.isEmpty(baseUrl)) {
+            String token = PublishStatusRegistry.open(getSlotKey(taskDefinition, commonContext), commonContext.getResultKey().getKey());
+            data.put(PublishStatusReporter.STATUS_URL, StringUtils.removeEnd(baseUrl, "/") + "/rest/gppublisher/1.0/publishes/report");
+            data.put(PublishStatusReporter.STATUS_TOKEN, token);
+            // Coalesced publishes are identified by the same token
+            data.put(EditCoalescer.COALESCE_URL, StringUtils.removeEnd(baseUrl, "/") + "/rest/gppublisher/1.0/coalesce");
+        }
+        return data;
+    }
+
+    @Override
+    public void processRuntimeTaskData(@NotNull TaskDefinition taskDefinition, @NotNull CommonContext commonContext) {
+        PublishStatusRegistry.close(getSlotKey(taskDefinition, commonContext));
+
+        // Only written by the agent after the edit has been committed
+        PluginSettings settings = null;
+        for (Map.Entry<String, String> entry : commonContext.getCurrentResult().getCustomBuildData().entrySet()) {
+            if (entry.getKey().startsWith(ExpansionFileRecords.KEY_PREFIX)) {
+                if (settings == null) {
+                    settings = pluginSettingsFactory.createGlobalSettings();
+                }
+                settings.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static String getSlotKey(TaskDefinition taskDefinition, CommonContext commonContext) {
+        return commonContext.getResultKey().getKey() + "/" + taskDefinition.getId();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.admin;
+
+import com.atlassian.bamboo.configuration.GlobalAdminAction;
+import com.drextended.gppublisher.bamboo.util.PublishStatusRegistry;
+import com.drextended.gppublisher.bamboo.util.PublishStatusSnapshot;
+
+import java.util.List;
+
+/**
+ * Admin page listing publishes currently running on this Bamboo server.
+ */
+public class ViewInFlightPublishesAction extends GlobalAdminAction {
+
+    private List<PublishStatusSnapshot> publishes;
+
+    @Override
+    public String execute() throws Exception {
+        publishes = PublishStatusRegistry.snapshot();
+        return SUCCESS;
+    }
+
+    public List<PublishStatusSnapshot> getPublishes() {
+        return publishes;
+    }
+}
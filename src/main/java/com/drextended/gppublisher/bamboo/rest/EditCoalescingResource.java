@@ -0,0 +1,134 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.rest;
+
+import com.atlassian.plugins.rest.api.security.annotation.UnrestrictedAccess;
+import com.drextended.gppublisher.bamboo.util.CoalescingRequest;
+import com.drextended.gppublisher.bamboo.util.CoalescingState;
+import com.drextended.gppublisher.bamboo.util.EditCoalescingRegistry;
+import com.drextended.gppublisher.bamboo.util.PublishStatusReporter;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Coordinates coalesced publishes of agents at {@code /rest/gppublisher/1.0/coalesce}, see {@link EditCoalescingRegistry}.
+ * <p>
+ * Like status reports, requests are authorized by the token of the report slot of the publish.
+ * </p>
+ */
+@Path("/coalesce")
+public class EditCoalescingResource {
+
+    private final Gson gson = new Gson();
+
+    @POST
+    @Path("/join")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response join(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final CoalescingRequest request = parse(json);
+        if (request == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        try {
+            return toResponse(EditCoalescingRegistry.join(token, request));
+        } catch (IllegalArgumentException ex) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+    }
+
+    @GET
+    @Path("/state")
+    @UnrestrictedAccess
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getState(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token) {
+        return toResponse(EditCoalescingRegistry.getState(token));
+    }
+
+    @POST
+    @Path("/edit")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response onEditCreated(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final CoalescingRequest request = parse(json);
+        if (request == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return toResponse(EditCoalescingRegistry.onEditCreated(token, request.getEditId()));
+    }
+
+    @POST
+    @Path("/uploaded")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response onUploaded(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final CoalescingRequest request = parse(json);
+        if (request == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return toResponse(EditCoalescingRegistry.onUploaded(token, request.getVersionCode()));
+    }
+
+    @POST
+    @Path("/failed")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response onFailed(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final CoalescingRequest request = parse(json);
+        if (request == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return toResponse(EditCoalescingRegistry.onFailed(token, request.getMessage()));
+    }
+
+    @POST
+    @Path("/finished")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response onFinished(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final CoalescingRequest request = parse(json);
+        if (request == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return toResponse(EditCoalescingRegistry.onFinished(token, request.isCommitted(), request.getMessage()));
+    }
+
+    private CoalescingRequest parse(String json) {
+        try {
+            return gson.fromJson(json, CoalescingRequest.class);
+        } catch (JsonParseException ex) {
+            return null;
+        }
+    }
+
+    private Response toResponse(CoalescingState state) {
+        return state != null ? Response.ok(gson.toJson(state)).build() : Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    private static Response toResponse(boolean accepted) {
+        return accepted ? Response.noContent().build() : Response.status(Response.Status.CONFLICT).build();
+    }
+}
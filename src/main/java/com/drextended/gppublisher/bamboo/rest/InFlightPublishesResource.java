@@ -0,0 +1,101 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.rest;
+
+import com.atlassian.plugins.rest.api.security.annotation.AdminOnly;
+import com.atlassian.plugins.rest.api.security.annotation.UnrestrictedAccess;
+import com.drextended.gppublisher.bamboo.util.PublishStatus;
+import com.drextended.gppublisher.bamboo.util.PublishStatusRegistry;
+import com.drextended.gppublisher.bamboo.util.PublishStatusReporter;
+import com.drextended.gppublisher.bamboo.util.PublishStatusSnapshot;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.lang.StringUtils;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Lists publishes in progress at {@code /rest/gppublisher/1.0/publishes},
+ * and receives the status reports agents send for them.
+ */
+@Path("/publishes")
+public class InFlightPublishesResource {
+
+    private final Gson gson = new Gson();
+
+    @GET
+    @AdminOnly
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getInFlightPublishes() {
+        return Response.ok(gson.toJson(PublishStatusRegistry.snapshot())).build();
+    }
+
+    /**
+     * Agents have no user to authenticate as, so reports are authorized by the token of the report slot.
+     */
+    @PUT
+    @Path("/report")
+    @UnrestrictedAccess
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response report(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token, String json) {
+        final PublishStatusSnapshot snapshot;
+        try {
+            snapshot = gson.fromJson(json, PublishStatusSnapshot.class);
+        } catch (JsonParseException ex) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (!isValid(snapshot)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return toResponse(PublishStatusRegistry.report(token, snapshot));
+    }
+
+    @DELETE
+    @Path("/report")
+    @UnrestrictedAccess
+    public Response finish(@HeaderParam(PublishStatusReporter.TOKEN_HEADER) String token) {
+        return toResponse(PublishStatusRegistry.report(token, null));
+    }
+
+    /**
+     * The admin page renders every reported snapshot, so one malformed report must not get stored.
+     */
+    private static boolean isValid(PublishStatusSnapshot snapshot) {
+        if (snapshot == null
+                || StringUtils.isEmpty(snapshot.getPackageName())
+                || StringUtils.isEmpty(snapshot.getPhase())) {
+            return false;
+        }
+        try {
+            PublishStatus.Phase.valueOf(snapshot.getPhase());
+            return true;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private static Response toResponse(boolean reported) {
+        return reported ? Response.noContent().build() : Response.status(Response.Status.NOT_FOUND).build();
+    }
+}
@@ -16,9 +16,9 @@
 package com.drextended.gppublisher.bamboo.util;
 
 import com.atlassian.bamboo.build.logger.BuildLogger;
-import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
 import com.google.api.client.http.AbstractInputStreamContent;
 import com.google.api.client.http.FileContent;
 import com.google.api.client.http.HttpTransport;
@@ -35,10 +35,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class to initialize the publisher APIs client library.
@@ -73,13 +82,27 @@ public class AndroidPublisherHelper {
     private final String mTrack;
     private final String mRolloutFractionString;
     private String mTrackCustomNames;
+    private final String mMainObbPath;
+    private final String mPatchObbPath;
+    private final String mMainObbRecord;
+    private final String mPatchObbRecord;
+    private final String mStatusUrl;
+    private final String mStatusToken;
+    private final String mCoalesceWindow;
+    private final String mCoalesceUrl;
+    private final PublishStatus mStatus;
 
     private AndroidPublisher mAndroidPublisher;
     private File mApkFile;
     private File mDeobfuscationFile;
+    private File mMainObbFile;
+    private File mPatchObbFile;
     private List<LocalizedText> mReleaseNotes;
     private Double mRolloutFraction;
     private String[] mCustomTracks;
+    private long mCoalesceWindowMillis;
+    private String mServiceAccount;
+    private final Map<String, String> mExpansionFileRecords = new LinkedHashMap<String, String>();
 
     /**
      * @param workingDirectory
@@ -97,6 +120,16 @@ public class AndroidPublisherHelper {
      * @param track                 The track for uploading the apk, can be 'alpha', beta', 'production' or 'rollout'
      * @param rolloutFraction       The rollout fraction
      * @param trackCustomNames      Comma separated track names for `custom` track
+     * @param mainObbPath           the main expansion file path, apk only
+     * @param patchObbPath          the patch expansion file path, apk only
+     * @param mainObbRecord         the server's record of the last uploaded main expansion file, see {@link ExpansionFileRecords}
+     * @param patchObbRecord        the server's record of the last uploaded patch expansion file
+     * @param statusUrl             the server url to report the publish status to, see {@link PublishStatusReporter}.
+     *                              Reporting is disabled if empty.
+     * @param statusToken           the token to report the publish status with
+     * @param coalesceWindow        seconds to wait for publishes of the same package to share the edit with.
+     *                              Coalescing is disabled if empty or 0, see {@link EditCoalescingRegistry}.
+     * @param coalesceUrl           the server url to coordinate coalesced publishes through, see {@link EditCoalescer}
      */
     public AndroidPublisherHelper(
             File workingDirectory,
@@ -111,7 +144,15 @@ public class AndroidPublisherHelper {
             String recentChangesListings,
             String track,
             String rolloutFraction,
-            String trackCustomNames
+            String trackCustomNames,
+            String mainObbPath,
+            String patchObbPath,
+            String mainObbRecord,
+            String patchObbRecord,
+            String statusUrl,
+            String statusToken,
+            String coalesceWindow,
+            String coalesceUrl
     ) {
         mWorkingDirectory = workingDirectory;
         mLogger = buildLogger;
@@ -126,6 +167,15 @@ public class AndroidPublisherHelper {
         mTrack = track;
         mRolloutFractionString = rolloutFraction;
         mTrackCustomNames = trackCustomNames;
+        mMainObbPath = mainObbPath;
+        mPatchObbPath = patchObbPath;
+        mMainObbRecord = mainObbRecord;
+        mPatchObbRecord = patchObbRecord;
+        mStatusUrl = statusUrl;
+        mStatusToken = statusToken;
+        mCoalesceWindow = coalesceWindow;
+        mCoalesceUrl = coalesceUrl;
+        mStatus = new PublishStatus(applicationName, packageName);
     }
 
     /**
@@ -164,6 +214,28 @@ public class AndroidPublisherHelper {
             mDeobfuscationFile = new File(deobfuscationFullPath);
             Preconditions.checkArgument(mDeobfuscationFile.exists(), "Mapping (deobfuscation) file not found in path: " + deobfuscationFullPath);
         }
+        if (!Strings.isNullOrEmpty(mCoalesceWindow)) {
+            try {
+                mCoalesceWindowMillis = TimeUnit.SECONDS.toMillis(Integer.parseInt(mCoalesceWindow.trim()));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Coalescing window cannot be parsed as integer: " + mCoalesceWindow);
+            }
+            Preconditions.checkArgument(mCoalesceWindowMillis >= 0 && mCoalesceWindowMillis <= EditCoalescingRegistry.MAX_WINDOW_MILLIS,
+                    "Coalescing window is out of range: " + mCoalesceWindow);
+        }
+        if (!Strings.isNullOrEmpty(mMainObbPath) || !Strings.isNullOrEmpty(mPatchObbPath)) {
+            Preconditions.checkArgument(mApkPath.endsWith(".apk"), "Expansion files are supported for apk files only!");
+        }
+        if (!Strings.isNullOrEmpty(mMainObbPath)) {
+            String mainObbFullPath = relativeToFullPath(mMainObbPath);
+            mMainObbFile = new File(mainObbFullPath);
+            Preconditions.checkArgument(mMainObbFile.exists(), "Main expansion file not found in path: " + mainObbFullPath);
+        }
+        if (!Strings.isNullOrEmpty(mPatchObbPath)) {
+            String patchObbFullPath = relativeToFullPath(mPatchObbPath);
+            mPatchObbFile = new File(patchObbFullPath);
+            Preconditions.checkArgument(mPatchObbFile.exists(), "Patch expansion file not found in path: " + patchObbFullPath);
+        }
 
         final InputStream jsonKeyInputStream;
         if (mFindJsonKeyInFile) {
@@ -212,14 +284,23 @@ public class AndroidPublisherHelper {
         mLogger.addBuildLogEntry("Creating AndroidPublisher Api Service...");
         JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
         HttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        Credential credential = GoogleCredential.fromStream(jsonKeyInputStream, httpTransport, jsonFactory)
+        GoogleCredential credential = GoogleCredential.fromStream(jsonKeyInputStream, httpTransport, jsonFactory)
                 .createScoped(Collections.singleton(AndroidPublisherScopes.ANDROIDPUBLISHER));
-        mAndroidPublisher = new AndroidPublisher.Builder(httpTransport, jsonFactory, new RequestInitializer(credential))
+        mServiceAccount = credential.getServiceAccountId();
+        mAndroidPublisher = new AndroidPublisher.Builder(httpTransport, jsonFactory, new RequestInitializer(credential, mStatus))
                 .setApplicationName(mApplicationName)
                 .build();
         mLogger.addBuildLogEntry("AndroidPublisher Api Service created!");
     }
 
+    /**
+     * @return records of the expansion files uploaded by a successful publish, to be kept by the server.
+     * Keyed by {@link ExpansionFileRecords#key(String, String)}.
+     */
+    public Map<String, String> getExpansionFileRecords() {
+        return mExpansionFileRecords;
+    }
+
     private String relativeToFullPath(String path) {
         if (path != null && !new File(path).isAbsolute()) {
             return new File(mWorkingDirectory, path).getAbsolutePath();
@@ -228,7 +309,8 @@ public class AndroidPublisherHelper {
     }
 
     /**
-     * Publishes apk file on Google Play
+     * Publishes apk file on Google Play.
+     * While running, the publish status is reported to the Bamboo server, see {@link PublishStatusReporter}.
      * @throws IOException
      * @throws GeneralSecurityException
      * @throws IllegalArgumentException
@@ -236,29 +318,297 @@ public class AndroidPublisherHelper {
     public void makeInsertRequest() throws IOException, GeneralSecurityException, IllegalArgumentException {
         Preconditions.checkArgument(mApkFile != null && mApkFile.exists(), "Apk file not found in path: " + mApkPath);
 
-        mLogger.addBuildLogEntry("Creating a new edit session...");
+        if (Strings.isNullOrEmpty(mStatusUrl) || Strings.isNullOrEmpty(mStatusToken)) {
+            publish();
+            return;
+        }
+        PublishStatusReporter reporter = new PublishStatusReporter(mStatusUrl, mStatusToken, mStatus, mLogger);
+        reporter.start();
+        try {
+            if (mCoalesceWindowMillis > 0 && !Strings.isNullOrEmpty(mCoalesceUrl)) {
+                publishCoalesced();
+            } else {
+                if (mCoalesceWindowMillis > 0) {
+                    mLogger.addBuildLogEntry("Coalescing needs the base URL of the Bamboo server, publishing alone...");
+                }
+                publish();
+            }
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    private void publish() throws IOException, IllegalArgumentException {
         final AndroidPublisher.Edits edits = mAndroidPublisher.edits();
+        final String editId = insertEdit(edits);
+
+        final List<ExpansionFilePublisher> expansionFiles = createExpansionFilePublishers();
+        Integer apkVersionCode = uploadFiles(edits, editId, expansionFiles);
+
+        mStatus.setPhase(PublishStatus.Phase.ASSIGNING_TRACKS);
+        Map<String, TrackRelease> releases = createReleases(apkVersionCode);
+        if (releases.isEmpty()) {
+            mLogger.addBuildLogEntry("Track was not set, so apk will not be assigned to any track...");
+        }
+        for (Map.Entry<String, TrackRelease> entry : releases.entrySet()) {
+            mLogger.addBuildLogEntry("Assigning release to the track: " + entry.getKey());
+            updateTrack(edits, editId, entry.getKey(), entry.getValue());
+            mLogger.addBuildLogEntry("Release successfully assigning to the track: " + entry.getKey());
+        }
+
+        commitEdit(edits, editId);
+        onCommitted(expansionFiles);
+    }
+
+    /**
+     * Publishes through an edit shared with other publishes of the same package, as directed by the server.
+     * Falls back to {@link #publish()} if the server can't be joined.
+     */
+    private void publishCoalesced() throws IOException, IllegalArgumentException {
+        final List<CoalescedRelease> releases = new ArrayList<CoalescedRelease>();
+        for (Map.Entry<String, TrackRelease> entry : createReleases(null).entrySet()) {
+            releases.add(CoalescedRelease.of(entry.getKey(), entry.getValue()));
+        }
+        final EditCoalescer coalescer = new EditCoalescer(mCoalesceUrl, mStatusToken);
+        CoalescingState state;
+        try {
+            state = coalescer.join(CoalescingRequest.join(mPackageName, mServiceAccount, mCoalesceWindowMillis, releases));
+        } catch (IOException ex) {
+            mLogger.addBuildLogEntry("Cannot join a shared edit (" + ex.getMessage() + "), publishing alone...");
+            try {
+                // In case the join got through after all, the others must not wait for this publish
+                coalescer.onFailed("Publishing alone");
+            } catch (IOException ignored) {
+                // Not joined
+            }
+            publish();
+            return;
+        }
+
+        final AndroidPublisher.Edits edits = mAndroidPublisher.edits();
+        final List<ExpansionFilePublisher> expansionFiles = createExpansionFilePublishers();
+        String createdEditId = null;
+        boolean leader = false;
+        boolean settled = false;
+        String waitMessage = null;
+        try {
+            while (true) {
+                switch (state.getStep()) {
+                    case WAIT:
+                        mStatus.setPhase(state.getEditId() == null
+                                ? PublishStatus.Phase.WAITING_FOR_SHARED_EDIT
+                                : PublishStatus.Phase.WAITING_FOR_SHARED_COMMIT);
+                        if (!state.getMessage().equals(waitMessage)) {
+                            waitMessage = state.getMessage();
+                            mLogger.addBuildLogEntry(waitMessage + "...");
+                        }
+                        final long waitStartedAt = System.nanoTime();
+                        try {
+                            EditCoalescer.sleep();
+                        } finally {
+                            mStatus.addQueueWait(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStartedAt));
+                        }
+                        break;
+                    case CREATE_EDIT:
+                        leader = true;
+                        createdEditId = insertEdit(edits);
+                        coalescer.onEditCreated(createdEditId);
+                        break;
+                    case UPLOAD:
+                        mStatus.setEditId(state.getEditId());
+                        mLogger.addBuildLogEntry(String.format("Uploading into shared edit %s of %d publish(es)...", state.getEditId(), state.getMembers()));
+                        coalescer.onUploaded(uploadFiles(edits, state.getEditId(), expansionFiles));
+                        break;
+                    case COMMIT:
+                        settled = true;
+                        commitShared(coalescer, edits, state);
+                        onCommitted(expansionFiles);
+                        return;
+                    case ABORT:
+                        settled = true;
+                        deleteEdit(edits, createdEditId);
+                        coalescer.onFinished(false, state.getMessage());
+                        throw new IOException(state.getMessage());
+                    case COMMITTED:
+                        settled = true;
+                        mLogger.addBuildLogEntry(String.format("Shared edit %s of %d publish(es): %s", state.getEditId(), state.getMembers(), state.getMessage()));
+                        onCommitted(expansionFiles);
+                        return;
+                    case FAILED:
+                        settled = true;
+                        throw new IOException(state.getMessage());
+                }
+                state = coalescer.getState();
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (!settled) {
+                // Includes being stopped: the other publishes must not be committed without this one
+                reportFailure(coalescer, edits, leader, createdEditId, ex);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Leader only: assigns the merged releases of all publishes of the shared edit and commits it.
+     */
+    private void commitShared(EditCoalescer coalescer, AndroidPublisher.Edits edits, CoalescingState state) throws IOException {
+        final String editId = state.getEditId();
+        try {
+            mStatus.setPhase(PublishStatus.Phase.ASSIGNING_TRACKS);
+            if (state.getReleases().isEmpty()) {
+                mLogger.addBuildLogEntry("Track was not set, so apk will not be assigned to any track...");
+            }
+            for (CoalescedRelease release : state.getReleases()) {
+                TrackRelease trackRelease = release.toTrackRelease();
+                mLogger.addBuildLogEntry(String.format("Assigning release with version codes %s to the track: %s",
+                        trackRelease.getVersionCodes(), release.getTrack()));
+                updateTrack(edits, editId, release.getTrack(), trackRelease);
+                mLogger.addBuildLogEntry("Release successfully assigning to the track: " + release.getTrack());
+            }
+        } catch (IOException | RuntimeException ex) {
+            deleteEdit(edits, editId);
+            finishShared(coalescer, false, ex.getMessage());
+            throw ex;
+        }
+        try {
+            commitEdit(edits, editId);
+        } catch (IOException | RuntimeException ex) {
+            // Whether the commit went through is unknown, so the edit is left alone
+            finishShared(coalescer, false, "Commit failed: " + ex.getMessage());
+            throw ex;
+        }
+        finishShared(coalescer, true, null);
+    }
+
+    private void finishShared(EditCoalescer coalescer, boolean committed, String message) {
+        try {
+            coalescer.onFinished(committed, message);
+        } catch (IOException ex) {
+            mLogger.addBuildLogEntry("Cannot tell the Bamboo server that the shared edit has finished: " + ex.getMessage());
+        }
+    }
+
+    private void reportFailure(EditCoalescer coalescer, AndroidPublisher.Edits edits, boolean leader, String editId, Exception failure) {
+        final String message = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+        if (leader) {
+            deleteEdit(edits, editId);
+            finishShared(coalescer, false, message);
+            return;
+        }
+        try {
+            coalescer.onFailed(message);
+        } catch (IOException ex) {
+            mLogger.addBuildLogEntry("Cannot tell the Bamboo server that the publish has failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Deletes an edit that will not be committed, best effort: an edit that is not deleted simply expires.
+     */
+    private void deleteEdit(AndroidPublisher.Edits edits, String editId) {
+        if (editId == null) {
+            return;
+        }
+        try {
+            edits.delete(mPackageName, editId).execute();
+            mLogger.addBuildLogEntry(String.format("Edit %s has been deleted", editId));
+        } catch (IOException ex) {
+            mLogger.addBuildLogEntry(String.format("Cannot delete edit %s: %s", editId, ex.getMessage()));
+        }
+    }
+
+    private List<ExpansionFilePublisher> createExpansionFilePublishers() {
+        final List<ExpansionFilePublisher> expansionFiles = new ArrayList<ExpansionFilePublisher>(2);
+        if (mMainObbFile != null) {
+            expansionFiles.add(new ExpansionFilePublisher(mLogger, mStatus, mPackageName, ExpansionFileRecords.TYPE_MAIN, mMainObbFile, mMainObbRecord));
+        }
+        if (mPatchObbFile != null) {
+            expansionFiles.add(new ExpansionFilePublisher(mLogger, mStatus, mPackageName, ExpansionFileRecords.TYPE_PATCH, mPatchObbFile, mPatchObbRecord));
+        }
+        return expansionFiles;
+    }
+
+    private void onCommitted(List<ExpansionFilePublisher> expansionFiles) {
+        // Only committed versions may be referenced by later publishes
+        for (ExpansionFilePublisher expansionFile : expansionFiles) {
+            String record = expansionFile.getUploadRecord();
+            if (record != null) {
+                mExpansionFileRecords.put(ExpansionFileRecords.key(mPackageName, expansionFile.getType()), record);
+            }
+        }
+        mLogger.addBuildLogEntry("=\n\n==================\n\n PUBLISHED SUCCESSFUL \n\n==================\n\n");
+    }
+
+    private String insertEdit(AndroidPublisher.Edits edits) throws IOException {
+        mStatus.setPhase(PublishStatus.Phase.CREATING_EDIT);
+        mLogger.addBuildLogEntry("Creating a new edit session...");
         AndroidPublisher.Edits.Insert editRequest = edits.insert(mPackageName, null);
         AppEdit edit = editRequest.execute();
         final String editId = edit.getId();
+        mStatus.setEditId(editId);
         mLogger.addBuildLogEntry(String.format("Created edit session with id: %s", editId));
+        return editId;
+    }
+
+    /**
+     * Uploads the apk/aab file, its mapping file and expansion files into the given edit.
+     * <p>
+     * Expansion files are hashed while the apk is uploaded, and uploaded (or referenced) while the
+     * mapping file is uploaded. They can't start earlier since they need the version code of the apk.
+     * </p>
+     *
+     * @return version code of the uploaded apk/aab
+     */
+    private Integer uploadFiles(
+            AndroidPublisher.Edits edits,
+            String editId,
+            List<ExpansionFilePublisher> expansionFiles
+    ) throws IOException, IllegalArgumentException {
+        if (expansionFiles.isEmpty()) {
+            return uploadFiles(edits, editId, expansionFiles, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(expansionFiles.size());
+        try {
+            return uploadFiles(edits, editId, expansionFiles, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Integer uploadFiles(
+            final AndroidPublisher.Edits edits,
+            final String editId,
+            List<ExpansionFilePublisher> expansionFiles,
+            ExecutorService executor
+    ) throws IOException, IllegalArgumentException {
+        List<Future<?>> hashing = new ArrayList<Future<?>>(expansionFiles.size());
+        for (final ExpansionFilePublisher expansionFile : expansionFiles) {
+            hashing.add(executor.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    expansionFile.hash();
+                    return null;
+                }
+            }));
+        }
 
         Integer apkVersionCode;
 
+        mStatus.setPhase(PublishStatus.Phase.UPLOADING_BINARY);
         if (mApkPath.endsWith(".apk")) {
             mLogger.addBuildLogEntry("Uploading new apk file...");
             final AbstractInputStreamContent apkFile = new FileContent(AndroidPublisherHelper.MIME_TYPE_APK, mApkFile);
-            Apk apk = edits.apks()
-                    .upload(mPackageName, editId, apkFile)
-                    .execute();
+            AndroidPublisher.Edits.Apks.Upload upload = edits.apks().upload(mPackageName, editId, apkFile);
+            trackProgress(upload.getMediaHttpUploader(), mApkFile);
+            Apk apk = upload.execute();
             apkVersionCode = apk.getVersionCode();
             mLogger.addBuildLogEntry(String.format("Apk file with version code %s has been uploaded!", apkVersionCode));
         } else if (mApkPath.endsWith(".aab")){
             mLogger.addBuildLogEntry("Uploading new aab file...");
             final AbstractInputStreamContent aabFile = new FileContent(AndroidPublisherHelper.MIME_TYPE_OCTET_STREAM, mApkFile);
-            Bundle bundle = edits.bundles()
-                    .upload(mPackageName, editId, aabFile)
-                    .execute();
+            AndroidPublisher.Edits.Bundles.Upload upload = edits.bundles().upload(mPackageName, editId, aabFile);
+            trackProgress(upload.getMediaHttpUploader(), mApkFile);
+            Bundle bundle = upload.execute();
             apkVersionCode = bundle.getVersionCode();
             mLogger.addBuildLogEntry(String.format("App Bundle with version code %s has been uploaded!", apkVersionCode));
         } else {
@@ -266,37 +616,81 @@ public class AndroidPublisherHelper {
             throw new IllegalArgumentException("File [" + mApkPath + "] is not apk nor aab file!");
         }
 
+        final int versionCode = apkVersionCode;
+        List<Future<?>> expansionFileUploads = new ArrayList<Future<?>>(expansionFiles.size());
+        for (int i = 0; i < expansionFiles.size(); i++) {
+            await(hashing.get(i));
+            final ExpansionFilePublisher expansionFile = expansionFiles.get(i);
+            expansionFileUploads.add(executor.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    expansionFile.publish(edits, editId, versionCode);
+                    return null;
+                }
+            }));
+        }
+
         if (mDeobfuscationFile != null) {
+            mStatus.setPhase(PublishStatus.Phase.UPLOADING_MAPPING);
             mLogger.addBuildLogEntry("Uploading new mapping file...");
             Preconditions.checkArgument(mDeobfuscationFile.exists(), "Mapping (deobfuscation) file not found in path: " + mDeobfuscationFilePath);
             final AbstractInputStreamContent deobfuscationFile = new FileContent(AndroidPublisherHelper.MIME_TYPE_OCTET_STREAM, mDeobfuscationFile);
-            edits.deobfuscationfiles()
-                    .upload(mPackageName, editId, apkVersionCode, "proguard", deobfuscationFile)
-                    .execute();
+            AndroidPublisher.Edits.Deobfuscationfiles.Upload upload = edits.deobfuscationfiles()
+                    .upload(mPackageName, editId, apkVersionCode, "proguard", deobfuscationFile);
+            trackProgress(upload.getMediaHttpUploader(), mDeobfuscationFile);
+            upload.execute();
             mLogger.addBuildLogEntry("Mapping has been uploaded!");
         }
 
-        if (TRACK_NONE.equals(mTrack)) {
-            mLogger.addBuildLogEntry("Track was not set, so apk will not be assigned to any track...");
-        } else if (TRACK_CUSTOM.equals(mTrack)){
-            for (String customTrack : mCustomTracks) {
-                assignToTrack(edits, editId, apkVersionCode, customTrack);
+        if (!expansionFileUploads.isEmpty()) {
+            mStatus.setPhase(PublishStatus.Phase.UPLOADING_EXPANSION_FILES);
+            for (Future<?> upload : expansionFileUploads) {
+                await(upload);
             }
-        } else {
-            assignToTrack(edits, editId, apkVersionCode, mTrack);
         }
-        mLogger.addBuildLogEntry("Committing changes for edit...");
-        AppEdit appEdit = edits.commit(mPackageName, editId)
-                .execute();
-        mLogger.addBuildLogEntry(String.format("App edit with id %s has been committed!", appEdit.getId()));
-        mLogger.addBuildLogEntry("=\n\n==================\n\n PUBLISHED SUCCESSFUL \n\n==================\n\n");
+        return apkVersionCode;
     }
 
-    private void assignToTrack(AndroidPublisher.Edits edits, String editId, Integer apkVersionCode, String trackName) throws IOException {
-        mLogger.addBuildLogEntry("Assigning release to the track: " + trackName);
+    /**
+     * Waits for the future, rethrowing its failure as is.
+     * If interrupted, cancels the future and throws {@link InterruptedIOException}.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @param apkVersionCode the version code to release, {@code null} for releases without version codes yet
+     * @return releases to assign, keyed by track name. Empty if the track is 'none'.
+     */
+    private Map<String, TrackRelease> createReleases(Integer apkVersionCode) {
+        Map<String, TrackRelease> releases = new LinkedHashMap<String, TrackRelease>();
+        if (TRACK_CUSTOM.equals(mTrack)) {
+            for (String customTrack : mCustomTracks) {
+                releases.put(customTrack, createRelease(apkVersionCode, customTrack));
+            }
+        } else if (!TRACK_NONE.equals(mTrack)) {
+            releases.put(mTrack, createRelease(apkVersionCode, mTrack));
+        }
+        return releases;
+    }
 
+    private TrackRelease createRelease(Integer apkVersionCode, String trackName) {
         TrackRelease release = new TrackRelease()
-                .setVersionCodes(Collections.singletonList(Long.valueOf(apkVersionCode)))
+                .setVersionCodes(apkVersionCode != null ? Collections.singletonList(Long.valueOf(apkVersionCode)) : null)
                 .setReleaseNotes(mReleaseNotes);
 
         if (TRACK_ROLLOUT.equals(trackName)) {
@@ -306,7 +700,10 @@ public class AndroidPublisherHelper {
         } else {
             release = release.setStatus("completed");
         }
+        return release;
+    }
 
+    private void updateTrack(AndroidPublisher.Edits edits, String editId, String trackName, TrackRelease release) throws IOException {
         Track trackContent = new Track()
                 .setTrack(trackName)
                 .setReleases(Collections.singletonList(release));
@@ -314,7 +711,19 @@ public class AndroidPublisherHelper {
         edits.tracks()
                 .update(mPackageName, editId, trackName, trackContent)
                 .execute();
+    }
+
+    private void commitEdit(AndroidPublisher.Edits edits, String editId) throws IOException {
+        mStatus.setPhase(PublishStatus.Phase.COMMITTING);
+        mLogger.addBuildLogEntry("Committing changes for edit...");
+        AppEdit appEdit = edits.commit(mPackageName, editId)
+                .execute();
+        mLogger.addBuildLogEntry(String.format("App edit with id %s has been committed!", appEdit.getId()));
+    }
 
-        mLogger.addBuildLogEntry("Release successfully assigning to the track: " + trackName);
+    private void trackProgress(MediaHttpUploader uploader, File file) {
+        if (uploader != null) {
+            uploader.setProgressListener(new UploadProgressListener(mStatus, file.length()));
+        }
     }
 }
@@ -0,0 +1,95 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.google.api.services.androidpublisher.model.LocalizedText;
+import com.google.api.services.androidpublisher.model.TrackRelease;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Release for one track of a coalesced publish, as exchanged with the Bamboo server.
+ * Releases of different publishes for the same track are merged into one with the version codes of all of them.
+ */
+public class CoalescedRelease {
+
+    private String track;
+    private String status;
+    private Double userFraction;
+    private Map<String, String> releaseNotes;
+    private List<Long> versionCodes;
+
+    static CoalescedRelease of(String track, TrackRelease release) {
+        CoalescedRelease coalesced = new CoalescedRelease();
+        coalesced.track = track;
+        coalesced.status = release.getStatus();
+        coalesced.userFraction = release.getUserFraction();
+        if (release.getReleaseNotes() != null) {
+            coalesced.releaseNotes = new LinkedHashMap<String, String>();
+            for (LocalizedText text : release.getReleaseNotes()) {
+                coalesced.releaseNotes.put(text.getLanguage(), text.getText());
+            }
+        }
+        return coalesced;
+    }
+
+    public String getTrack() {
+        return track;
+    }
+
+    /**
+     * @return {@code true} if both releases are for the same track and can be merged into one
+     */
+    boolean conflictsWith(CoalescedRelease other) {
+        return track.equals(other.track)
+                && !(Objects.equals(status, other.status)
+                && Objects.equals(userFraction, other.userFraction)
+                && Objects.equals(releaseNotes, other.releaseNotes));
+    }
+
+    /**
+     * @return a copy of this release with the given version code added
+     */
+    CoalescedRelease withVersionCode(long versionCode) {
+        CoalescedRelease merged = new CoalescedRelease();
+        merged.track = track;
+        merged.status = status;
+        merged.userFraction = userFraction;
+        merged.releaseNotes = releaseNotes;
+        merged.versionCodes = versionCodes != null ? new ArrayList<Long>(versionCodes) : new ArrayList<Long>();
+        merged.versionCodes.add(versionCode);
+        return merged;
+    }
+
+    TrackRelease toTrackRelease() {
+        List<LocalizedText> notes = null;
+        if (releaseNotes != null) {
+            notes = new ArrayList<LocalizedText>(releaseNotes.size());
+            for (Map.Entry<String, String> entry : releaseNotes.entrySet()) {
+                notes.add(new LocalizedText().setLanguage(entry.getKey()).setText(entry.getValue()));
+            }
+        }
+        return new TrackRelease()
+                .setVersionCodes(versionCodes)
+                .setStatus(status)
+                .setUserFraction(userFraction)
+                .setReleaseNotes(notes);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import java.util.List;
+
+/**
+ * Body of the requests an agent sends to the Bamboo server while taking part in a coalesced publish,
+ * see {@link EditCoalescer}. Each request only sets the fields it needs.
+ */
+public class CoalescingRequest {
+
+    // join
+    String packageName;
+    String account;
+    long windowMillis;
+    List<CoalescedRelease> releases;
+    // edit created
+    String editId;
+    // files uploaded
+    Integer versionCode;
+    // failed or finished
+    String message;
+    boolean committed;
+
+    static CoalescingRequest join(String packageName, String account, long windowMillis, List<CoalescedRelease> releases) {
+        CoalescingRequest request = new CoalescingRequest();
+        request.packageName = packageName;
+        request.account = account;
+        request.windowMillis = windowMillis;
+        request.releases = releases;
+        return request;
+    }
+
+    static CoalescingRequest editCreated(String editId) {
+        CoalescingRequest request = new CoalescingRequest();
+        request.editId = editId;
+        return request;
+    }
+
+    static CoalescingRequest uploaded(int versionCode) {
+        CoalescingRequest request = new CoalescingRequest();
+        request.versionCode = versionCode;
+        return request;
+    }
+
+    static CoalescingRequest finished(boolean committed, String message) {
+        CoalescingRequest request = new CoalescingRequest();
+        request.committed = committed;
+        request.message = message;
+        return request;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public List<CoalescedRelease> getReleases() {
+        return releases;
+    }
+
+    public String getEditId() {
+        return editId;
+    }
+
+    public Integer getVersionCode() {
+        return versionCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import java.util.List;
+
+/**
+ * What a member of a coalesced publish has to do next, as told by the Bamboo server.
+ */
+public class CoalescingState {
+
+    public enum Step {
+        /** Wait for an earlier shared edit of the package, or for the other members */
+        WAIT,
+        /** Leader only: create the shared edit */
+        CREATE_EDIT,
+        /** Upload the files into the shared edit */
+        UPLOAD,
+        /** Leader only: assign the merged releases to their tracks and commit the edit */
+        COMMIT,
+        /** Leader only: another member failed, delete the edit */
+        ABORT,
+        COMMITTED,
+        FAILED
+    }
+
+    private final Step step;
+    private final String editId;
+    private final String message;
+    private final List<CoalescedRelease> releases;
+    private final int members;
+
+    CoalescingState(Step step, String editId, String message, List<CoalescedRelease> releases, int members) {
+        this.step = step;
+        this.editId = editId;
+        this.message = message;
+        this.releases = releases;
+        this.members = members;
+    }
+
+    public Step getStep() {
+        return step;
+    }
+
+    public String getEditId() {
+        return editId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the merged releases to assign, only set for {@link Step#COMMIT}
+     */
+    public List<CoalescedRelease> getReleases() {
+        return releases;
+    }
+
+    /**
+     * @return number of publishes sharing the edit
+     */
+    public int getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent side of a coalesced publish: asks the Bamboo server what to do next and tells it what has been done,
+ * see {@link EditCoalescingRegistry} for the server side.
+ */
+public class EditCoalescer {
+
+    public static final String COALESCE_URL = "gppublisher.coalesceUrl";
+
+    static final long POLL_INTERVAL_MILLIS = 1000;
+    // The server gives up on an agent it has not heard from for a minute, so there is no point in trying longer
+    private static final long MAX_UNREACHABLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final HttpRequestFactory mRequestFactory;
+    private final String mUrl;
+    private final String mToken;
+    private final Gson mGson = new Gson();
+
+    EditCoalescer(String url, String token) {
+        mToken = token;
+        // Like PublishStatusReporter: trusts the JVM trust store, never sends the Google credentials
+        mRequestFactory = new NetHttpTransport().createRequestFactory(request -> {
+            request.setConnectTimeout(TIMEOUT_MILLIS);
+            request.setReadTimeout(TIMEOUT_MILLIS);
+            request.getHeaders().set(PublishStatusReporter.TOKEN_HEADER, mToken);
+            request.getHeaders().set("X-Atlassian-Token", "no-check");
+        });
+        mUrl = url;
+    }
+
+    CoalescingState join(CoalescingRequest request) throws IOException {
+        return parse(post("/join", request));
+    }
+
+    /**
+     * Retries for up to a minute if the server can't be reached.
+     */
+    CoalescingState getState() throws IOException {
+        final long startedAt = System.currentTimeMillis();
+        while (true) {
+            try {
+                return parse(mRequestFactory.buildGetRequest(new GenericUrl(mUrl + "/state")).execute());
+            } catch (IOException ex) {
+                if (!isRetryable(ex) || System.currentTimeMillis() - startedAt > MAX_UNREACHABLE_MILLIS) {
+                    throw ex;
+                }
+                sleep();
+            }
+        }
+    }
+
+    void onEditCreated(String editId) throws IOException {
+        post("/edit", CoalescingRequest.editCreated(editId)).disconnect();
+    }
+
+    void onUploaded(int versionCode) throws IOException {
+        post("/uploaded", CoalescingRequest.uploaded(versionCode)).disconnect();
+    }
+
+    void onFailed(String message) throws IOException {
+        post("/failed", CoalescingRequest.finished(false, message)).disconnect();
+    }
+
+    /**
+     * Retries for up to a minute if the server can't be reached: until the server knows,
+     * the other publishes of the group keep waiting for the commit.
+     */
+    void onFinished(boolean committed, String message) throws IOException {
+        final long startedAt = System.currentTimeMillis();
+        while (true) {
+            try {
+                post("/finished", CoalescingRequest.finished(committed, message)).disconnect();
+                return;
+            } catch (IOException ex) {
+                if (!isRetryable(ex) || System.currentTimeMillis() - startedAt > MAX_UNREACHABLE_MILLIS) {
+                    throw ex;
+                }
+                try {
+                    sleep();
+                } catch (InterruptedIOException interrupted) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits before the next request.
+     */
+    static void sleep() throws InterruptedIOException {
+        try {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the shared edit");
+        }
+    }
+
+    /**
+     * The server answers 4xx when the publish is unknown or the request doesn't fit its state, asking again won't help.
+     */
+    private static boolean isRetryable(IOException ex) {
+        return !(ex instanceof HttpResponseException) || ((HttpResponseException) ex).getStatusCode() >= 500;
+    }
+
+    private HttpResponse post(String path, CoalescingRequest request) throws IOException {
+        byte[] json = mGson.toJson(request).getBytes(StandardCharsets.UTF_8);
+        HttpRequest httpRequest = mRequestFactory.buildPostRequest(new GenericUrl(mUrl + path), new ByteArrayContent("application/json", json));
+        return httpRequest.execute();
+    }
+
+    private CoalescingState parse(HttpResponse response) throws IOException {
+        try {
+            return mGson.fromJson(response.parseAsString(), CoalescingState.class);
+        } finally {
+            response.disconnect();
+        }
+    }
+}
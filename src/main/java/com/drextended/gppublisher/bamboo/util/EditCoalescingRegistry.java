@@ -0,0 +1,368 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side coordinator of coalesced publishes, driven by the requests agents send to the REST endpoint,
+ * see {@link EditCoalescer} for the agent side.
+ * <p>
+ * Publishes of the same package and service account that join within the window of the first one form a group
+ * sharing one edit. The first member is the leader: it creates the edit, and once the window has closed and
+ * every member has uploaded its files, assigns the merged releases to their tracks and commits the edit.
+ * Groups of the same package are queued, a group only gets its edit once the previous one has finished,
+ * so that committing one edit never invalidates another one.
+ * </p>
+ * <p>
+ * A group is committed as a whole or not at all: if a member fails, is stopped, or its agent stops reporting,
+ * the leader deletes the edit and every member fails. Members are identified by the token of their status
+ * report slot, see {@link PublishStatusRegistry}, which also tells whether their agent is still alive.
+ * </p>
+ * <p>
+ * Unlike {@link PublishStatusRegistry} this is not lock-free: the state of a group changes as a whole,
+ * and agents only call it about once a second while they wait.
+ * </p>
+ */
+public final class EditCoalescingRegistry {
+
+    public static final long MAX_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Agents report their status every few seconds, see PublishStatusReporter
+    private static final long MAX_SILENCE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Groups of each package, in the order they get their edit
+    private static final Map<String, List<Group>> QUEUES = new HashMap<String, List<Group>>();
+    private static final Map<String, Member> MEMBERS = new HashMap<String, Member>();
+
+    private EditCoalescingRegistry() {
+    }
+
+    /**
+     * Adds the publish to the open group of its package, or starts a new group if there is no open group
+     * or its releases conflict with the ones of the group.
+     *
+     * @return the state of the publish, or {@code null} if there is no open report slot for the token
+     * @throws IllegalArgumentException if the request is incomplete
+     */
+    public static synchronized CoalescingState join(String token, CoalescingRequest request) {
+        final String resultKey = PublishStatusRegistry.getResultKey(token);
+        if (resultKey == null || !PublishStatusRegistry.touch(token)) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        purge();
+        Member member = MEMBERS.get(token);
+        if (member != null) {
+            // The agent retried a join that did get through
+            return getState(member, now);
+        }
+
+        checkJoinRequest(request);
+        member = new Member(token, resultKey, request.getReleases());
+        List<Group> queue = QUEUES.get(request.getPackageName());
+        if (queue == null) {
+            queue = new ArrayList<Group>();
+            QUEUES.put(request.getPackageName(), queue);
+        }
+        Group group = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+        if (group == null || !group.accepts(request, now)) {
+            group = new Group(request.getPackageName(), request.getAccount(), now + request.getWindowMillis());
+            queue.add(group);
+        }
+        member.group = group;
+        group.members.add(member);
+        MEMBERS.put(token, member);
+        return getState(member, now);
+    }
+
+    /**
+     * @return what the publish has to do next, or {@code null} if it has not joined
+     */
+    public static synchronized CoalescingState getState(String token) {
+        Member member = MEMBERS.get(token);
+        if (member == null) {
+            return null;
+        }
+        PublishStatusRegistry.touch(token);
+        sweep(member.group.packageName);
+        return getState(member, System.currentTimeMillis());
+    }
+
+    /**
+     * Called by the leader once it has created the edit.
+     *
+     * @return {@code false} if the publish is not the leader of a group waiting for its edit
+     */
+    public static synchronized boolean onEditCreated(String token, String editId) {
+        Member member = MEMBERS.get(token);
+        if (member == null || Strings.isNullOrEmpty(editId)) {
+            return false;
+        }
+        PublishStatusRegistry.touch(token);
+        Group group = member.group;
+        if (member != group.getLeader() || group.editId != null || group.finished) {
+            return false;
+        }
+        group.editId = editId;
+        return true;
+    }
+
+    /**
+     * Called by each member once its files have been uploaded into the edit.
+     *
+     * @return {@code false} if the publish has not joined, or its group has no edit yet
+     */
+    public static synchronized boolean onUploaded(String token, Integer versionCode) {
+        Member member = MEMBERS.get(token);
+        if (member == null || versionCode == null || member.group.editId == null) {
+            return false;
+        }
+        PublishStatusRegistry.touch(token);
+        member.versionCode = versionCode;
+        return true;
+    }
+
+    /**
+     * Called by a member that has failed, was stopped or publishes alone after all. Fails the whole group
+     * unless the leader has already started committing it, then only the leader can still fail it.
+     *
+     * @return {@code false} if the publish has not joined
+     */
+    public static synchronized boolean onFailed(String token, String message) {
+        Member member = MEMBERS.get(token);
+        if (member == null) {
+            return false;
+        }
+        PublishStatusRegistry.touch(token);
+        Group group = member.group;
+        String failure = String.format("Publish %s in the shared edit failed: %s", member.resultKey, message);
+        if (member == group.getLeader()) {
+            // Nobody else would finish the group
+            group.finish(false, failure);
+        } else if (!group.closed) {
+            group.abort(failure);
+        }
+        return true;
+    }
+
+    /**
+     * Called by the leader once the edit has been committed, or deleted after the group or the leader failed.
+     *
+     * @return {@code false} if the publish is not the leader of a group
+     */
+    public static synchronized boolean onFinished(String token, boolean committed, String message) {
+        Member member = MEMBERS.get(token);
+        if (member == null || member != member.group.getLeader()) {
+            return false;
+        }
+        PublishStatusRegistry.touch(token);
+        member.group.finish(committed, committed
+                ? "Committed by publish " + member.resultKey
+                : String.format("Publish %s in the shared edit failed: %s", member.resultKey, message));
+        return true;
+    }
+
+    private static void checkJoinRequest(CoalescingRequest request) {
+        if (request == null || Strings.isNullOrEmpty(request.getPackageName()) || request.getReleases() == null
+                || request.getWindowMillis() < 0 || request.getWindowMillis() > MAX_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("Incomplete join request");
+        }
+        for (CoalescedRelease release : request.getReleases()) {
+            if (release == null || Strings.isNullOrEmpty(release.getTrack())) {
+                throw new IllegalArgumentException("Release without track");
+            }
+        }
+    }
+
+    private static CoalescingState getState(Member member, long now) {
+        final Group group = member.group;
+        final boolean leader = member == group.getLeader();
+        if (group.finished) {
+            return group.committed
+                    ? group.newState(CoalescingState.Step.COMMITTED, group.commitMessage, null)
+                    : group.newState(CoalescingState.Step.FAILED, group.failure, null);
+        }
+        if (group.failure != null) {
+            return group.newState(leader ? CoalescingState.Step.ABORT : CoalescingState.Step.FAILED, group.failure, null);
+        }
+        if (QUEUES.get(group.packageName).get(0) != group) {
+            return group.newState(CoalescingState.Step.WAIT, "Waiting for an earlier shared edit of the package", null);
+        }
+        if (group.editId == null) {
+            return leader
+                    ? group.newState(CoalescingState.Step.CREATE_EDIT, null, null)
+                    : group.newState(CoalescingState.Step.WAIT, "Waiting for the shared edit to be created", null);
+        }
+        if (member.versionCode == null) {
+            return group.newState(CoalescingState.Step.UPLOAD, null, null);
+        }
+        if (leader && now >= group.windowEndsAt && group.isUploaded()) {
+            // No more joins from now on, even if the leader takes its time to ask again
+            group.closed = true;
+            return group.newState(CoalescingState.Step.COMMIT, null, group.mergeReleases());
+        }
+        return group.newState(CoalescingState.Step.WAIT, "Waiting for the other publishes of the shared edit", null);
+    }
+
+    /**
+     * Fails groups with members whose agent is gone. Until the group is committed every member counts,
+     * after that only the leader.
+     */
+    private static void sweep(String packageName) {
+        List<Group> queue = QUEUES.get(packageName);
+        if (queue == null) {
+            return;
+        }
+        for (Group group : new ArrayList<Group>(queue)) {
+            for (Member member : group.members) {
+                if (group.finished || PublishStatusRegistry.isAlive(member.token, MAX_SILENCE_MILLIS)) {
+                    continue;
+                }
+                if (member == group.getLeader()) {
+                    // Nobody is left to commit or delete the edit, it simply expires
+                    group.finish(false, String.format("Lost contact with publish %s, which leads the shared edit", member.resultKey));
+                } else if (!group.closed) {
+                    group.abort(String.format("Lost contact with publish %s in the shared edit", member.resultKey));
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets members whose task has finished: their report slot is closed once the result is processed.
+     */
+    private static void purge() {
+        Iterator<Member> iterator = MEMBERS.values().iterator();
+        while (iterator.hasNext()) {
+            Member member = iterator.next();
+            if (PublishStatusRegistry.getResultKey(member.token) == null) {
+                sweep(member.group.packageName);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Group {
+        final String packageName;
+        final String account;
+        final long windowEndsAt;
+        final List<Member> members = new ArrayList<Member>();
+        String editId;
+        // No more joins, the leader is committing
+        boolean closed;
+        String failure;
+        boolean finished;
+        boolean committed;
+        String commitMessage;
+
+        Group(String packageName, String account, long windowEndsAt) {
+            this.packageName = packageName;
+            this.account = account;
+            this.windowEndsAt = windowEndsAt;
+        }
+
+        Member getLeader() {
+            return members.get(0);
+        }
+
+        boolean accepts(CoalescingRequest request, long now) {
+            if (closed || failure != null || finished || now >= windowEndsAt || !Objects.equals(account, request.getAccount())) {
+                return false;
+            }
+            for (Member member : members) {
+                for (CoalescedRelease release : member.releases) {
+                    for (CoalescedRelease other : request.getReleases()) {
+                        if (release.conflictsWith(other)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        boolean isUploaded() {
+            for (Member member : members) {
+                if (member.versionCode == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<CoalescedRelease> mergeReleases() {
+            Map<String, CoalescedRelease> merged = new LinkedHashMap<String, CoalescedRelease>();
+            for (Member member : members) {
+                for (CoalescedRelease release : member.releases) {
+                    CoalescedRelease existing = merged.get(release.getTrack());
+                    merged.put(release.getTrack(), (existing != null ? existing : release).withVersionCode(member.versionCode));
+                }
+            }
+            return new ArrayList<CoalescedRelease>(merged.values());
+        }
+
+        void abort(String message) {
+            if (failure == null) {
+                failure = message;
+            }
+        }
+
+        void finish(boolean committed, String message) {
+            if (finished) {
+                return;
+            }
+            this.finished = true;
+            this.committed = committed;
+            if (committed) {
+                commitMessage = message;
+            } else if (failure == null) {
+                failure = message;
+            }
+            List<Group> queue = QUEUES.get(packageName);
+            queue.remove(this);
+            if (queue.isEmpty()) {
+                QUEUES.remove(packageName);
+            }
+        }
+
+        CoalescingState newState(CoalescingState.Step step, String message, List<CoalescedRelease> releases) {
+            return new CoalescingState(step, editId, message, releases, members.size());
+        }
+    }
+
+    private static final class Member {
+        final String token;
+        final String resultKey;
+        final List<CoalescedRelease> releases;
+        Group group;
+        Integer versionCode;
+
+        Member(String token, String resultKey, List<CoalescedRelease> releases) {
+            this.token = token;
+            this.resultKey = resultKey;
+            this.releases = releases;
+        }
+    }
+}
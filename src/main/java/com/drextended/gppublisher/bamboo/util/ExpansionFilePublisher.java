@@ -0,0 +1,138 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.AbstractInputStreamContent;
+import com.google.api.client.http.FileContent;
+import com.google.api.services.androidpublisher.AndroidPublisher;
+import com.google.api.services.androidpublisher.model.ExpansionFile;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Publishes one expansion (OBB) file for an uploaded apk.
+ * <p>
+ * If the file is the same as the one uploaded with an earlier apk version, the new version just references it
+ * instead of uploading it again. Otherwise the file is uploaded with a resumable upload.
+ * </p>
+ */
+class ExpansionFilePublisher {
+
+    private final BuildLogger mLogger;
+    private final PublishStatus mStatus;
+    private final String mPackageName;
+    private final String mType;
+    private final File mFile;
+    private final String mRecord;
+    private String mSha256;
+    private Integer mUploadedVersionCode;
+
+    /**
+     * @param record the server's record of the last file of this type uploaded for the package, may be {@code null}.
+     *               See {@link ExpansionFileRecords}.
+     */
+    ExpansionFilePublisher(BuildLogger logger, PublishStatus status, String packageName, String type, File file, String record) {
+        mLogger = logger;
+        mStatus = status;
+        mPackageName = packageName;
+        mType = type;
+        mFile = file;
+        mRecord = record;
+    }
+
+    String getType() {
+        return mType;
+    }
+
+    /**
+     * Hashes the file. Takes a few seconds for large files, so it runs while the apk is being uploaded.
+     */
+    void hash() throws IOException {
+        mSha256 = Files.asByteSource(mFile).hash(Hashing.sha256()).toString();
+    }
+
+    void publish(AndroidPublisher.Edits edits, String editId, int apkVersionCode) throws IOException {
+        Integer referencedVersionCode = findRecordedVersionCode();
+        if (referencedVersionCode != null && referencedVersionCode != apkVersionCode
+                && isUploaded(edits, editId, referencedVersionCode)) {
+            mLogger.addBuildLogEntry(String.format("The %s expansion file is unchanged, referencing the one of version code %s...", mType, referencedVersionCode));
+            edits.expansionfiles()
+                    .update(mPackageName, editId, apkVersionCode, mType, new ExpansionFile().setReferencesVersion(referencedVersionCode))
+                    .execute();
+            mLogger.addBuildLogEntry(String.format("The %s expansion file of version code %s has been referenced!", mType, referencedVersionCode));
+            return;
+        }
+
+        mLogger.addBuildLogEntry(String.format("Uploading new %s expansion file...", mType));
+        final AbstractInputStreamContent content = new FileContent(AndroidPublisherHelper.MIME_TYPE_OCTET_STREAM, mFile);
+        AndroidPublisher.Edits.Expansionfiles.Upload upload = edits.expansionfiles()
+                .upload(mPackageName, editId, apkVersionCode, mType, content);
+        if (upload.getMediaHttpUploader() != null) {
+            upload.getMediaHttpUploader().setProgressListener(new UploadProgressListener(mStatus, mFile.length()));
+        }
+        upload.execute();
+        mUploadedVersionCode = apkVersionCode;
+        mLogger.addBuildLogEntry(String.format("The %s expansion file has been uploaded!", mType));
+    }
+
+    /**
+     * The record is only a cache: if it can't be read, the file is uploaded as if there was no record.
+     */
+    private Integer findRecordedVersionCode() {
+        try {
+            return ExpansionFileRecords.findVersionCode(mRecord, mSha256);
+        } catch (RuntimeException ex) {
+            mLogger.addBuildLogEntry(String.format("Cannot read the record of the %s expansion file (%s), uploading it...", mType, ex.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * The record to keep for later publishes. Must only be kept once the edit has been committed,
+     * a record pointing to a version that was never committed would be referenced by the next publish.
+     *
+     * @return the record of the uploaded file, or {@code null} if the file was referenced instead of uploaded
+     */
+    String getUploadRecord() {
+        return mUploadedVersionCode != null ? ExpansionFileRecords.format(mSha256, mUploadedVersionCode) : null;
+    }
+
+    /**
+     * Checks that the given version still holds the file itself (a reference to a reference is not allowed)
+     * and that its size matches the local file.
+     */
+    private boolean isUploaded(AndroidPublisher.Edits edits, String editId, int versionCode) throws IOException {
+        final ExpansionFile expansionFile;
+        try {
+            expansionFile = edits.expansionfiles()
+                    .get(mPackageName, editId, versionCode, mType)
+                    .execute();
+        } catch (GoogleJsonResponseException ex) {
+            // Whatever the reason, the file can't be referenced, so it is uploaded instead
+            mLogger.addBuildLogEntry(String.format("Cannot check the %s expansion file of version code %s (%s), uploading it...",
+                    mType, versionCode, ex.getStatusCode()));
+            return false;
+        }
+        return expansionFile.getReferencesVersion() == null
+                && expansionFile.getFileSize() != null
+                && expansionFile.getFileSize() == mFile.length();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Record of the last expansion file uploaded for a package: its hash and the apk version it was uploaded with.
+ * <p>
+ * Google Play does not expose hashes of uploaded expansion files, so the records are kept by the Bamboo server.
+ * The server passes the records of the package to the agent as runtime task data, and the agent returns
+ * the records of newly uploaded files in the custom data of the result once the edit has been committed.
+ * Both use the keys of {@link #key(String, String)} and values of {@link #format(String, int)}.
+ * </p>
+ */
+public final class ExpansionFileRecords {
+
+    public static final String TYPE_MAIN = "main";
+    public static final String TYPE_PATCH = "patch";
+    public static final String KEY_PREFIX = "gppublisher.obb.";
+
+    private ExpansionFileRecords() {
+    }
+
+    public static String key(String packageName, String expansionFileType) {
+        return KEY_PREFIX + packageName + "." + expansionFileType;
+    }
+
+    /**
+     * @return keys of the records of all expansion file types of the package
+     */
+    public static List<String> keys(String packageName) {
+        return Arrays.asList(
+                key(packageName, TYPE_MAIN),
+                key(packageName, TYPE_PATCH)
+        );
+    }
+
+    static String format(String sha256, int versionCode) {
+        return sha256 + ":" + versionCode;
+    }
+
+    /**
+     * @param record the record of the package, may be {@code null}
+     * @return version code of the apk the file with the given hash was uploaded with, or {@code null} if unknown
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    static Integer findVersionCode(String record, String sha256) {
+        if (record == null) {
+            return null;
+        }
+        int separator = record.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed expansion file record: " + record);
+        }
+        if (!sha256.equals(record.substring(0, separator))) {
+            return null;
+        }
+        return Integer.valueOf(record.substring(separator + 1));
+    }
+}
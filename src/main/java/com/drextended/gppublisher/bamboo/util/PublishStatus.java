@@ -0,0 +1,115 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live state of a single publish, written by {@link AndroidPublisherHelper} and periodically
+ * sent to the Bamboo server by {@link PublishStatusReporter}.
+ * <p>
+ * All fields are volatile or atomic, so updates never block and readers always see
+ * a recent (but not necessarily consistent across fields) value.
+ * </p>
+ */
+public class PublishStatus {
+
+    public enum Phase {
+        WAITING_FOR_SHARED_EDIT,
+        CREATING_EDIT,
+        UPLOADING_BINARY,
+        UPLOADING_MAPPING,
+        UPLOADING_EXPANSION_FILES,
+        WAITING_FOR_SHARED_COMMIT,
+        ASSIGNING_TRACKS,
+        COMMITTING
+    }
+
+    private final String mApplicationName;
+    private final String mPackageName;
+    private final long mStartedAt = System.currentTimeMillis();
+
+    private volatile Phase mPhase = Phase.CREATING_EDIT;
+    private volatile String mEditId;
+    private final AtomicInteger mRetries = new AtomicInteger();
+    private final AtomicLong mQueueWaitMillis = new AtomicLong();
+    private final long mCreatedNanos = System.nanoTime();
+    // Uploads may run in parallel, each one keeps its own counters
+    private final List<UploadProgressListener> mUploads = new CopyOnWriteArrayList<UploadProgressListener>();
+
+    PublishStatus(String applicationName, String packageName) {
+        mApplicationName = applicationName;
+        mPackageName = packageName;
+    }
+
+    void setPhase(Phase phase) {
+        mPhase = phase;
+        if (phase == Phase.WAITING_FOR_SHARED_COMMIT || phase == Phase.ASSIGNING_TRACKS || phase == Phase.COMMITTING) {
+            // No upload runs in these phases any more
+            for (UploadProgressListener upload : mUploads) {
+                upload.finish();
+            }
+        }
+    }
+
+    void setEditId(String editId) {
+        mEditId = editId;
+    }
+
+    void addUpload(UploadProgressListener upload) {
+        mUploads.add(upload);
+    }
+
+    void onRetry() {
+        mRetries.incrementAndGet();
+    }
+
+    void addQueueWait(long millis) {
+        mQueueWaitMillis.addAndGet(millis);
+    }
+
+    PublishStatusSnapshot snapshot() {
+        long bytesUploaded = 0;
+        long bytesTotal = 0;
+        long throughput = 0;
+        long lastProgressNanos = mCreatedNanos;
+        final long now = System.nanoTime();
+        for (UploadProgressListener upload : mUploads) {
+            bytesUploaded += upload.getBytesUploaded();
+            bytesTotal += upload.getBytesTotal();
+            throughput += upload.getThroughput(now);
+            lastProgressNanos = Math.max(lastProgressNanos, upload.getLastProgressNanos());
+        }
+        return new PublishStatusSnapshot(
+                null,
+                mApplicationName,
+                mPackageName,
+                mPhase.name(),
+                mEditId,
+                bytesUploaded,
+                bytesTotal,
+                throughput,
+                mRetries.get(),
+                mQueueWaitMillis.get(),
+                System.currentTimeMillis() - mStartedAt,
+                TimeUnit.NANOSECONDS.toMillis(now - lastProgressNanos)
+        );
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.google.common.io.BaseEncoding;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Server side registry of publishes in progress, fed by the reports agents send to the REST endpoint.
+ * <p>
+ * Before a task is sent to an agent, the server opens a report slot for it and hands the agent a random token.
+ * Only reports carrying a token of an open slot are accepted. The slot is closed when the task finishes.
+ * </p>
+ */
+public final class PublishStatusRegistry {
+
+    private static final long MAX_SLOT_AGE_MILLIS = TimeUnit.DAYS.toMillis(2);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ConcurrentMap<String, Slot> SLOTS = new ConcurrentHashMap<String, Slot>();
+
+    private PublishStatusRegistry() {
+    }
+
+    /**
+     * Opens a report slot for a task execution.
+     *
+     * @param slotKey   identifies the task execution, used to close the slot
+     * @param resultKey key of the build or deployment result, shown next to the reported status
+     * @return token the agent has to send its reports with
+     */
+    public static String open(String slotKey, String resultKey) {
+        final long now = System.currentTimeMillis();
+        // Normally closed when the task finishes, this only catches slots whose task never reported back
+        SLOTS.values().removeIf(slot -> now - slot.openedAt > MAX_SLOT_AGE_MILLIS);
+
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String token = BaseEncoding.base16().lowerCase().encode(bytes);
+        SLOTS.put(token, new Slot(slotKey, resultKey, now));
+        return token;
+    }
+
+    public static void close(String slotKey) {
+        SLOTS.values().removeIf(slot -> slot.key.equals(slotKey));
+    }
+
+    /**
+     * @param snapshot the reported status, or {@code null} once the publish has finished
+     * @return {@code false} if there is no open slot for the token
+     */
+    public static boolean report(String token, PublishStatusSnapshot snapshot) {
+        Slot slot = token != null ? SLOTS.get(token) : null;
+        if (slot == null) {
+            return false;
+        }
+        slot.lastSeenAt = System.currentTimeMillis();
+        slot.snapshot.set(snapshot != null ? snapshot.withResultKey(slot.resultKey) : null);
+        return true;
+    }
+
+    /**
+     * @return key of the build or deployment result of the open slot, or {@code null} if there is no open slot for the token
+     */
+    static String getResultKey(String token) {
+        Slot slot = token != null ? SLOTS.get(token) : null;
+        return slot != null ? slot.resultKey : null;
+    }
+
+    /**
+     * Marks the slot as alive, for requests from the agent other than status reports.
+     *
+     * @return {@code false} if there is no open slot for the token
+     */
+    static boolean touch(String token) {
+        Slot slot = token != null ? SLOTS.get(token) : null;
+        if (slot == null) {
+            return false;
+        }
+        slot.lastSeenAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Agents report every few seconds while publishing, so a slot that has not reported for a while
+     * belongs to an agent that is gone or can't reach the server any more.
+     *
+     * @return {@code true} if the slot is open and has reported (or was opened) within the given time
+     */
+    static boolean isAlive(String token, long maxSilenceMillis) {
+        Slot slot = token != null ? SLOTS.get(token) : null;
+        return slot != null && System.currentTimeMillis() - slot.lastSeenAt <= maxSilenceMillis;
+    }
+
+    /**
+     * @return the last reported status of all publishes in progress, oldest first
+     */
+    public static List<PublishStatusSnapshot> snapshot() {
+        List<Slot> slots = new ArrayList<Slot>(SLOTS.values());
+        slots.sort(Comparator.comparingLong((Slot slot) -> slot.openedAt));
+        List<PublishStatusSnapshot> snapshots = new ArrayList<PublishStatusSnapshot>(slots.size());
+        for (Slot slot : slots) {
+            PublishStatusSnapshot snapshot = slot.snapshot.get();
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    private static final class Slot {
+        final String key;
+        final String resultKey;
+        final long openedAt;
+        final AtomicReference<PublishStatusSnapshot> snapshot = new AtomicReference<PublishStatusSnapshot>();
+        volatile long lastSeenAt;
+
+        Slot(String key, String resultKey, long openedAt) {
+            this.key = key;
+            this.resultKey = resultKey;
+            this.openedAt = openedAt;
+            this.lastSeenAt = openedAt;
+        }
+    }
+}
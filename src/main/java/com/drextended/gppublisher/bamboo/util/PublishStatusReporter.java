@@ -0,0 +1,115 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the {@link PublishStatus} of a running publish to the Bamboo server every few seconds,
+ * so that it is listed on the server even when the task runs on a remote or elastic agent.
+ * <p>
+ * Reporting runs on its own daemon thread and is best effort: failures are logged once and never fail the publish.
+ * </p>
+ */
+public class PublishStatusReporter implements Runnable {
+
+    public static final String STATUS_URL = "gppublisher.statusUrl";
+    public static final String STATUS_TOKEN = "gppublisher.statusToken";
+    public static final String TOKEN_HEADER = "X-GPPublisher-Token";
+
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final HttpRequestFactory mRequestFactory;
+    private final GenericUrl mUrl;
+    private final String mToken;
+    private final PublishStatus mStatus;
+    private final BuildLogger mLogger;
+    private final Gson mGson = new Gson();
+    private ScheduledExecutorService mExecutor;
+    private volatile boolean mFailureLogged;
+
+    PublishStatusReporter(String url, String token, PublishStatus status, BuildLogger logger) {
+        mToken = token;
+        // Not the Google API transport: that one only trusts Google's certificates, while the Bamboo server
+        // may use a corporate or self-signed CA from the JVM trust store. Never sends the Google credentials.
+        mRequestFactory = new NetHttpTransport().createRequestFactory(request -> {
+            request.setConnectTimeout(TIMEOUT_MILLIS);
+            request.setReadTimeout(TIMEOUT_MILLIS);
+            request.getHeaders().set(TOKEN_HEADER, mToken);
+            request.getHeaders().set("X-Atlassian-Token", "no-check");
+        });
+        mUrl = new GenericUrl(url);
+        mStatus = status;
+        mLogger = logger;
+    }
+
+    void start() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gppublisher-status-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mExecutor.scheduleWithFixedDelay(this, 0, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops reporting and tells the server that the publish has finished.
+     */
+    void stop() {
+        mExecutor.shutdownNow();
+        try {
+            mExecutor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            send(mRequestFactory.buildDeleteRequest(mUrl));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            onFailure(ex);
+        }
+    }
+
+    public void run() {
+        try {
+            byte[] json = mGson.toJson(mStatus.snapshot()).getBytes(StandardCharsets.UTF_8);
+            send(mRequestFactory.buildPutRequest(mUrl, new ByteArrayContent("application/json", json)));
+        } catch (IOException | RuntimeException ex) {
+            onFailure(ex);
+        }
+    }
+
+    private void send(HttpRequest request) throws IOException {
+        request.execute().disconnect();
+    }
+
+    private void onFailure(Exception ex) {
+        if (!mFailureLogged) {
+            mFailureLogged = true;
+            mLogger.addBuildLogEntry("Cannot report publish status to the Bamboo server: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+/**
+ * Immutable view of a {@link PublishStatus} at a point in time.
+ * Sent by agents to the server as JSON, used by the admin page and returned as is by the REST endpoint.
+ */
+public class PublishStatusSnapshot {
+
+    private final String resultKey;
+    private final String applicationName;
+    private final String packageName;
+    private final String phase;
+    private final String editId;
+    private final long bytesUploaded;
+    private final long bytesTotal;
+    private final long throughputBytesPerSecond;
+    private final int retries;
+    private final long queueWaitMillis;
+    private final long elapsedMillis;
+    private final long millisSinceLastProgress;
+
+    PublishStatusSnapshot(
+            String resultKey,
+            String applicationName,
+            String packageName,
+            String phase,
+            String editId,
+            long bytesUploaded,
+            long bytesTotal,
+            long throughputBytesPerSecond,
+            int retries,
+            long queueWaitMillis,
+            long elapsedMillis,
+            long millisSinceLastProgress
+    ) {
+        this.resultKey = resultKey;
+        this.applicationName = applicationName;
+        this.packageName = packageName;
+        this.phase = phase;
+        this.editId = editId;
+        this.bytesUploaded = bytesUploaded;
+        this.bytesTotal = bytesTotal;
+        this.throughputBytesPerSecond = throughputBytesPerSecond;
+        this.retries = retries;
+        this.queueWaitMillis = queueWaitMillis;
+        this.elapsedMillis = elapsedMillis;
+        this.millisSinceLastProgress = millisSinceLastProgress;
+    }
+
+    /**
+     * @return key of the build or deployment result running the publish. Set by the server, not by the agent.
+     */
+    public String getResultKey() {
+        return resultKey;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getEditId() {
+        return editId;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public long getThroughputBytesPerSecond() {
+        return throughputBytesPerSecond;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return time spent waiting for a shared edit or its commit, see {@link EditCoalescingRegistry}
+     */
+    public long getQueueWaitMillis() {
+        return queueWaitMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getMillisSinceLastProgress() {
+        return millisSinceLastProgress;
+    }
+
+    PublishStatusSnapshot withResultKey(String resultKey) {
+        return new PublishStatusSnapshot(
+                resultKey,
+                applicationName,
+                packageName,
+                phase,
+                editId,
+                bytesUploaded,
+                bytesTotal,
+                throughputBytesPerSecond,
+                retries,
+                queueWaitMillis,
+                elapsedMillis,
+                millisSinceLastProgress
+        );
+    }
+}
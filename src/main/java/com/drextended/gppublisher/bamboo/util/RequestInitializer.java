@@ -1,21 +1,53 @@
 package com.drextended.gppublisher.bamboo.util;
 
+import com.google.api.client.http.HttpIOExceptionHandler;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
 
 import java.io.IOException;
 
 public class RequestInitializer implements HttpRequestInitializer {
 
     private final HttpRequestInitializer initializer;
+    private final PublishStatus status;
 
-    public RequestInitializer(HttpRequestInitializer credential) {
+    public RequestInitializer(HttpRequestInitializer credential, PublishStatus status) {
         this.initializer = credential;
+        this.status = status;
     }
 
     public void initialize(HttpRequest httpRequest) throws IOException {
         initializer.initialize(httpRequest);
         httpRequest.setConnectTimeout(3 * 60000);  // 3 minutes connect timeout
         httpRequest.setReadTimeout(3 * 60000);  // 3 minutes read timeout
+
+        // Only counts the retries the client already makes, no retry policy is added:
+        // edits.insert and edits.commit are not safe to repeat
+        final HttpUnsuccessfulResponseHandler handler = httpRequest.getUnsuccessfulResponseHandler();
+        if (handler != null) {
+            httpRequest.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler() {
+                public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) throws IOException {
+                    boolean retry = handler.handleResponse(request, response, supportsRetry);
+                    if (retry) {
+                        status.onRetry();
+                    }
+                    return retry;
+                }
+            });
+        }
+        final HttpIOExceptionHandler ioExceptionHandler = httpRequest.getIOExceptionHandler();
+        if (ioExceptionHandler != null) {
+            httpRequest.setIOExceptionHandler(new HttpIOExceptionHandler() {
+                public boolean handleIOException(HttpRequest request, boolean supportsRetry) throws IOException {
+                    boolean retry = ioExceptionHandler.handleIOException(request, supportsRetry);
+                    if (retry) {
+                        status.onRetry();
+                    }
+                    return retry;
+                }
+            });
+        }
     }
 }
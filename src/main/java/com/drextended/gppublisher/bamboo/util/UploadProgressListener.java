@@ -0,0 +1,96 @@
+/*
+ *  Copyright Roman Donchenko. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.drextended.gppublisher.bamboo.util;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the progress of a single resumable upload for {@link PublishStatus}.
+ * The uploader calls it once per uploaded chunk, so it adds no per-byte overhead.
+ * <p>
+ * Only the thread running the upload writes the counters, other threads just read them.
+ * </p>
+ */
+class UploadProgressListener implements MediaHttpUploaderProgressListener {
+
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesTotal;
+    private volatile long bytesUploaded;
+    private volatile long throughput;
+    private volatile long lastProgressNanos = System.nanoTime();
+    private volatile long lastIntervalNanos;
+    private volatile boolean finished;
+    private long windowStartNanos = System.nanoTime();
+    private long windowStartBytes;
+
+    UploadProgressListener(PublishStatus status, long bytesTotal) {
+        this.bytesTotal = bytesTotal;
+        status.addUpload(this);
+    }
+
+    /**
+     * The throughput is recalculated at most once per second,
+     * so it reflects the current rate rather than the average since the upload started.
+     */
+    public void progressChanged(MediaHttpUploader uploader) {
+        final long now = System.nanoTime();
+        final long uploaded = uploader.getNumBytesUploaded();
+        final long windowNanos = now - windowStartNanos;
+        if (windowNanos >= THROUGHPUT_WINDOW_NANOS) {
+            throughput = (uploaded - windowStartBytes) * TimeUnit.SECONDS.toNanos(1) / windowNanos;
+            windowStartNanos = now;
+            windowStartBytes = uploaded;
+        }
+        bytesUploaded = uploaded;
+        lastIntervalNanos = now - lastProgressNanos;
+        lastProgressNanos = now;
+        if (uploader.getUploadState() == MediaHttpUploader.UploadState.MEDIA_COMPLETE) {
+            finish();
+        }
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    /**
+     * @return the current throughput, or 0 if the upload has finished or has made no progress for longer
+     * than the throughput window, or than twice the time the last chunk took if that is longer
+     */
+    long getThroughput(long nowNanos) {
+        if (finished) {
+            return 0;
+        }
+        long stalledAfterNanos = Math.max(THROUGHPUT_WINDOW_NANOS, 2 * lastIntervalNanos);
+        return nowNanos - lastProgressNanos > stalledAfterNanos ? 0 : throughput;
+    }
+
+    long getLastProgressNanos() {
+        return lastProgressNanos;
+    }
+}
@@ -53,6 +53,20 @@
     required='false'
 /]
 
+[@ww.textfield
+    labelKey="com.drextended.gppublisher.bamboo.mainObbPath"
+    descriptionKey="com.drextended.gppublisher.bamboo.mainObbPath.info"
+    name="mainObbPath"
+    required='false'
+/]
+
+[@ww.textfield
+    labelKey="com.drextended.gppublisher.bamboo.patchObbPath"
+    descriptionKey="com.drextended.gppublisher.bamboo.patchObbPath.info"
+    name="patchObbPath"
+    required='false'
+/]
+
 [@ww.textfield
     labelKey="com.drextended.gppublisher.bamboo.recentChangesListings"
     descriptionKey="com.drextended.gppublisher.bamboo.recentChangesListings.info"
@@ -90,4 +104,11 @@
 
     [/@ui.bambooSection]
 
+[@ww.textfield
+    labelKey="com.drextended.gppublisher.bamboo.coalesceWindow"
+    descriptionKey="com.drextended.gppublisher.bamboo.coalesceWindow.info"
+    name="coalesceWindow"
+    required='false'
+/]
+
 [@ww.label labelKey="com.drextended.gppublisher.bamboo.branding" name="googlePlayBranding"/]
\ No newline at end of file
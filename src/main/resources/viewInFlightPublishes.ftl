@@ -0,0 +1,47 @@
+<html>
+<head>
+    <title>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.title'/]</title>
+    <meta name="decorator" content="adminpage">
+</head>
+<body>
+<h1>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.title'/]</h1>
+<p>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.description'/]</p>
+
+[#if action.publishes?has_content]
+    <table class="aui">
+        <thead>
+        <tr>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.resultKey'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.packageName'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.phase'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.uploaded'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.throughput'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.lastProgress'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.retries'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.queueWait'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.elapsed'/]</th>
+            <th>[@ww.text name='com.drextended.gppublisher.bamboo.admin.inFlight.editId'/]</th>
+        </tr>
+        </thead>
+        <tbody>
+        [#list action.publishes as publish]
+            <tr>
+                <td>${publish.resultKey!}</td>
+                <td>${publish.packageName!}</td>
+                <td>${publish.phase!}</td>
+                <td>${publish.bytesUploaded?c} / ${publish.bytesTotal?c} B</td>
+                <td>${publish.throughputBytesPerSecond?c} B/s</td>
+                <td>${(publish.millisSinceLastProgress / 1000)?int} s</td>
+                <td>${publish.retries}</td>
+                <td>${(publish.queueWaitMillis / 1000)?int} s</td>
+                <td>${(publish.elapsedMillis / 1000)?int} s</td>
+                <td>${publish.editId!}</td>
+            </tr>
+        [/#list]
+        </tbody>
+    </table>
+[#else]
+    [@ui.messageBox type="info" titleKey="com.drextended.gppublisher.bamboo.admin.inFlight.empty"/]
+[/#if]
+</body>
+</html>